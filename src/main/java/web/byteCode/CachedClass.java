@@ -0,0 +1,137 @@
+package web.byteCode;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A class parsed once by {@link ClassReaderCache}. It keeps the compact index of
+ * the class (names, super class, interfaces and annotations) and, unless the
+ * cache drops the class bytes, the {@link ClassReader} itself.
+ *
+ * This class is thread safe.
+ */
+public final class CachedClass {
+
+    /**
+     * The reader, or <tt>null</tt> if the class bytes have been dropped.
+     */
+    private final ClassReader reader;
+
+    private final String className;
+
+    private final String superName;
+
+    private final String[] interfaces;
+
+    private final List<String> annotationTypes;
+
+    private final Map<String, List<String>> memberAnnotationTypes;
+
+    /**
+     * The estimated size of this entry in bytes. With the class bytes, it includes
+     * the bound of {@link ClassReader#getWeight()}, which covers the strings the
+     * shared reader decodes after the entry has been weighed.
+     */
+    private final int weight;
+
+    /**
+     * Constructs a new {@link CachedClass} object.
+     *
+     * @param reader the reader of the class.
+     * @param keepBytes <tt>false</tt> to keep only the compact index.
+     */
+    CachedClass(final ClassReader reader, final boolean keepBytes) {
+        this.reader = keepBytes ? reader : null;
+        this.className = reader.getClassName();
+        this.superName = reader.getSuperName();
+        this.interfaces = reader.getInterfaces();
+        this.annotationTypes = Collections.unmodifiableList(reader.getAnnotationTypes());
+        final Map<String, List<String>> members = reader.getMemberAnnotationTypes();
+        for (Map.Entry<String, List<String>> e : members.entrySet()) {
+            e.setValue(Collections.unmodifiableList(e.getValue()));
+        }
+        this.memberAnnotationTypes = Collections.unmodifiableMap(members);
+
+        int w = 64 + weigh(this.className) + weigh(this.superName);
+        for (String s : this.interfaces) {
+            w += weigh(s);
+        }
+        for (String s : this.annotationTypes) {
+            w += weigh(s);
+        }
+        for (Map.Entry<String, List<String>> e : this.memberAnnotationTypes.entrySet()) {
+            w += weigh(e.getKey());
+            for (String s : e.getValue()) {
+                w += weigh(s);
+            }
+        }
+        this.weight = keepBytes ? w + reader.getWeight() : w;
+    }
+
+    /**
+     * Find the annotation in the class.
+     *
+     * @param targetAnnotationClass the target annotation.
+     * @return found the target annotation for <tt>true</tt>, or for <tt>false</tt>.
+     */
+    public boolean containsAnnotation(final Class<?> targetAnnotationClass) {
+        final String descriptor = 'L' + targetAnnotationClass.getName().replace('.', '/') + ';';
+        return this.annotationTypes.contains(descriptor);
+    }
+
+    /**
+     * Returns the reader of the class.
+     *
+     * @return the reader, or <tt>null</tt> if the cache keeps only the compact index.
+     */
+    public ClassReader getReader() {
+        return this.reader;
+    }
+
+    /**
+     * @see ClassReader#getClassName()
+     */
+    public String getClassName() {
+        return this.className;
+    }
+
+    /**
+     * @see ClassReader#getSuperName()
+     */
+    public String getSuperName() {
+        return this.superName;
+    }
+
+    /**
+     * @see ClassReader#getInterfaces()
+     */
+    public String[] getInterfaces() {
+        return this.interfaces.clone();
+    }
+
+    /**
+     * @see ClassReader#getAnnotationTypes()
+     */
+    public List<String> getAnnotationTypes() {
+        return this.annotationTypes;
+    }
+
+    /**
+     * @see ClassReader#getMemberAnnotationTypes()
+     */
+    public Map<String, List<String>> getMemberAnnotationTypes() {
+        return this.memberAnnotationTypes;
+    }
+
+    int getWeight() {
+        return this.weight;
+    }
+
+    /**
+     * Estimates the size of a string: the object headers plus two bytes a char.
+     */
+    private static int weigh(final String s) {
+        return s == null ? 0 : 40 + 2 * s.length();
+    }
+}
@@ -0,0 +1,99 @@
+package web.byteCode;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A precompiled set of the classes, fields and methods searched by
+ * {@link ClassReader#findCallSites ClassReader.findCallSites}. The names may be
+ * given as full names (<tt>web.byteCode.ClassReader</tt>) or internal names
+ * (<tt>web/byteCode/ClassReader</tt>).
+ *
+ * Build the set once and share it among the readers. It must not be modified
+ * while readers are using it.
+ */
+public class CallSiteTargets {
+
+    /**
+     * The internal names of the owners of all the targets, to reject most of the
+     * constant pool items with a single lookup.
+     */
+    private final Set<String> owners = new HashSet<String>();
+
+    /**
+     * The targets, as <tt>owner</tt>, <tt>owner.name</tt> or <tt>owner.nameDescriptor</tt>.
+     */
+    private final Set<String> keys = new HashSet<String>();
+
+    /**
+     * Targets every reference to a class: its fields, its methods, <tt>new</tt>
+     * and class literals.
+     *
+     * @param owner the class name.
+     * @return this set.
+     */
+    public CallSiteTargets addClass(final String owner) {
+        final String internal = owner.replace('.', '/');
+        this.owners.add(internal);
+        this.keys.add(internal);
+        return this;
+    }
+
+    /**
+     * Targets every field or method with the given name, whatever the descriptor.
+     *
+     * @param owner the class name.
+     * @param name the field or method name.
+     * @return this set.
+     */
+    public CallSiteTargets addMember(final String owner, final String name) {
+        final String internal = owner.replace('.', '/');
+        this.owners.add(internal);
+        this.keys.add(internal + '.' + name);
+        return this;
+    }
+
+    /**
+     * Targets a single field or method.
+     *
+     * @param owner the class name.
+     * @param name the field or method name.
+     * @param desc the field or method descriptor, such as <tt>(Ljava/lang/Class;)Z</tt>.
+     * @return this set.
+     */
+    public CallSiteTargets addMember(final String owner, final String name, final String desc) {
+        final String internal = owner.replace('.', '/');
+        this.owners.add(internal);
+        this.keys.add(internal + '.' + name + desc);
+        return this;
+    }
+
+    /**
+     * Returns whether a reference to the class matches.
+     *
+     * @param owner the internal class name.
+     * @return <tt>true</tt> if the class is targeted.
+     */
+    boolean matchesClass(final String owner) {
+        return this.owners.contains(owner) && this.keys.contains(owner);
+    }
+
+    /**
+     * Returns whether a reference to the field or the method matches.
+     *
+     * @param owner the internal class name.
+     * @param name the field or method name.
+     * @param desc the field or method descriptor.
+     * @return <tt>true</tt> if the member is targeted.
+     */
+    boolean matchesMember(final String owner, final String name, final String desc) {
+        if (!this.owners.contains(owner)) {
+            return false;
+        }
+        if (this.keys.contains(owner)) {
+            return true;
+        }
+        final String member = owner + '.' + name;
+        return this.keys.contains(member) || this.keys.contains(member + desc);
+    }
+}
@@ -0,0 +1,25 @@
+package web.byteCode;
+
+/**
+ * A visitor of the call sites found by {@link ClassReader#findCallSites ClassReader.findCallSites}.
+ */
+public interface CallSiteVisitor {
+
+    /**
+     * Visits an instruction referencing one of the targets.
+     *
+     * @param methodName the name of the method containing the instruction.
+     * @param methodDesc the descriptor of the method containing the instruction.
+     * @param offset the offset of the instruction in the code of the method.
+     * @param opcode the opcode of the instruction, see {@link web.byteCode.meta.Opcodes}.
+     *        For an <tt>invokedynamic</tt> or an <tt>ldc</tt> of a method handle, the
+     *        other parameters describe the referenced member.
+     * @param owner the internal name of the referenced class.
+     * @param name the referenced field or method name, or <tt>null</tt> for
+     *        <tt>new</tt> and class literals.
+     * @param desc the referenced field or method descriptor, or <tt>null</tt> for
+     *        <tt>new</tt> and class literals.
+     */
+    void visitCallSite(String methodName, String methodDesc, int offset, int opcode,
+                       String owner, String name, String desc);
+}
@@ -31,15 +31,25 @@ package web.byteCode;
 
 import com.google.common.base.Splitter;
 import web.byteCode.meta.ConstantPoolTag;
+import web.byteCode.meta.Opcodes;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * A Tiny Java class parser to read an existing java class file. This class parses
  * a byte array conforming to the Java class file format and find the target annotation.
  * This parser just find the annotation and ignore another.
  *
+ * A reader is thread safe once constructed: the strings are decoded lazily into
+ * a shared cache and each thread uses its own buffer, so one reader can serve
+ * concurrent queries.
+ *
  * Created by xiang.xu on 2015/1/4.
  */
 public class ClassReader {
@@ -63,9 +73,11 @@ public class ClassReader {
      * which GREATLY improves performances (by a factor 2 to 3). This caching
      * strategy could be extended to all constant pool items, but its benefit
      * would not be so great for these items (because they are much less
-     * expensive to parse than CONSTANT_Utf8 items).
+     * expensive to parse than CONSTANT_Utf8 items). The items are published
+     * with volatile semantics so that the readers can be shared among threads;
+     * two threads may decode the same item, which is harmless.
      */
-    private final String[] strings;
+    private final AtomicReferenceArray<String> strings;
 
     /**
      * Maximum length of the strings contained in the constant pool of the
@@ -79,6 +91,12 @@ public class ClassReader {
      */
     public final int header;
 
+    /**
+     * The per thread buffer used to read the strings, shared by all the readers
+     * of a thread and grown to the longest string read so far.
+     */
+    private static final ThreadLocal<char[]> BUFFER = new ThreadLocal<char[]>();
+
     // ------------------------------------------------------------------------
     // Constructors
     // ------------------------------------------------------------------------
@@ -120,7 +138,7 @@ public class ClassReader {
         // parses the constant pool
         this.items = new int[ReaderUtil.readUnsignedShort(off + 8, this.src)];
         final int n = this.items.length;
-        this.strings = new String[n];
+        this.strings = new AtomicReferenceArray<String>(n);
         int max = 0;
         int index = off + 10;
         for (int i = 1; i < n; ++i) {
@@ -176,7 +194,7 @@ public class ClassReader {
      */
     public boolean containsAnnotation(final Class<?> targetAnnotationClass) {
         int idx = this.getAttributes(); // current offset in the class file
-        final char[] buf = new char[this.maxStringLength]; // buffer used to read strings
+        final char[] buf = this.getBuffer(); // buffer used to read strings
 
         for (int i = ReaderUtil.readUnsignedShort(idx, this.src); i > 0 ; i-- ) {
             final String attrName = this.readUTF8(idx + 2, buf);
@@ -188,6 +206,418 @@ public class ClassReader {
         return  false;
     }
 
+    /**
+     * Returns the internal name of the class (see {@link #conventNameToByteCodeStyle}).
+     *
+     * @return the internal class name, such as <tt>web/controller/indexController</tt>.
+     */
+    public String getClassName() {
+        final char[] buf = this.getBuffer();
+        return this.readClass(this.header + 2, buf);
+    }
+
+    /**
+     * Returns the internal name of the super class.
+     *
+     * @return the internal super class name, or <tt>null</tt> for <tt>java/lang/Object</tt>.
+     */
+    public String getSuperName() {
+        final char[] buf = this.getBuffer();
+        return this.readClass(this.header + 4, buf);
+    }
+
+    /**
+     * Returns the internal names of the implemented interfaces.
+     *
+     * @return the internal interface names, may be empty.
+     */
+    public String[] getInterfaces() {
+        final char[] buf = this.getBuffer();
+        final String[] interfaces = new String[ReaderUtil.readUnsignedShort(this.header + 6, this.src)];
+        for (int i = 0; i < interfaces.length; ++i) {
+            interfaces[i] = this.readClass(this.header + 8 + i * 2, buf);
+        }
+        return interfaces;
+    }
+
+    /**
+     * Returns an upper bound of the memory held by this reader, in bytes: the class
+     * bytes, the constant pool index, the string cache slots and every string the
+     * cache may ever hold, since the strings are decoded lazily after the reader
+     * has been weighed.
+     *
+     * @return the estimated size in bytes.
+     */
+    int getWeight() {
+        int weight = this.src.length + 8 * this.items.length;
+        for (int i = 1; i < this.items.length; ++i) {
+            final int index = this.items[i];
+            if (index != 0 && this.src[index - 1] == ConstantPoolTag.UTF8) {
+                // the object headers plus at most two bytes a UTF8 byte
+                weight += 40 + 2 * ReaderUtil.readUnsignedShort(index, this.src);
+            }
+        }
+        return weight;
+    }
+
+    /**
+     * Returns the runtime visible annotations declared on the class.
+     *
+     * @return the annotation descriptors, such as <tt>Lweb/annotation/Controller;</tt>.
+     */
+    public List<String> getAnnotationTypes() {
+        final List<String> types = new ArrayList<String>();
+        int idx = this.getAttributes();
+        final char[] buf = this.getBuffer();
+
+        for (int i = ReaderUtil.readUnsignedShort(idx, this.src); i > 0 ; i-- ) {
+            final String attrName = this.readUTF8(idx + 2, buf);
+            if ("RuntimeVisibleAnnotations".equals(attrName)) {
+                this.readAnnotationTypes(idx + 8, buf, types);
+                break;
+            }
+            idx += 6 + ReaderUtil.readInt(idx + 4, this.src);
+        }
+        return types;
+    }
+
+    /**
+     * Returns the runtime visible annotations declared on the fields and methods
+     * of the class. Members without annotations are not included.
+     *
+     * @return the annotation descriptors keyed by member name plus member descriptor,
+     *         such as <tt>index()V</tt>.
+     */
+    public Map<String, List<String>> getMemberAnnotationTypes() {
+        final Map<String, List<String>> members = new LinkedHashMap<String, List<String>>();
+        final char[] buf = this.getBuffer();
+        // skips the header
+        int idx = this.header + 8 + ReaderUtil.readUnsignedShort(this.header + 6, this.src) * 2;
+        idx = this.readMemberAnnotationTypes(idx, buf, members); // fields
+        this.readMemberAnnotationTypes(idx, buf, members); // methods
+        return members;
+    }
+
+    /**
+     * Reads the annotations of a field_info or method_info table.
+     *
+     * @param idx the offset of the members count.
+     * @param buf buf buffer to be used to call {@link #readUTF8 readUTF8}.
+     * @param members the map the annotated members are added to.
+     * @return the end offset of the member table.
+     */
+    private int readMemberAnnotationTypes(final int idx, final char[] buf, final Map<String, List<String>> members) {
+        int v = idx + 2;
+        for (int i = ReaderUtil.readUnsignedShort(idx, this.src); i > 0; --i) {
+            final String member = this.readUTF8(v + 2, buf) + this.readUTF8(v + 4, buf);
+            int attr = v + 8;
+            for (int j = ReaderUtil.readUnsignedShort(v + 6, this.src); j > 0; --j) {
+                if ("RuntimeVisibleAnnotations".equals(this.readUTF8(attr, buf))) {
+                    final List<String> types = new ArrayList<String>();
+                    this.readAnnotationTypes(attr + 6, buf, types);
+                    members.put(member, types);
+                }
+                attr += 6 + ReaderUtil.readInt(attr + 2, this.src);
+            }
+            v = attr;
+        }
+        return v;
+    }
+
+    /**
+     * Iterater the annotation and collect the type of each annotation.
+     *
+     * @param idx the offset of the byte array.
+     * @param buf buf buffer to be used to call {@link #readUTF8 readUTF8}.
+     * @param types the list the annotation descriptors are added to.
+     */
+    private void readAnnotationTypes(final int idx, final char[] buf, final List<String> types) {
+        for (int i = ReaderUtil.readUnsignedShort(idx, this.src), v = idx + 2; i > 0 ; i--) {
+            types.add(this.readUTF8(v, buf));
+            v = skipElement(v + 2, buf);
+        }
+    }
+
+    /**
+     * Find whether the constant pool references one of the targets. This does
+     * not read the code of the methods.
+     *
+     * @param targets the classes, fields and methods searched.
+     * @return <tt>true</tt> if the class may contain call sites of the targets.
+     */
+    public boolean referencesAny(final CallSiteTargets targets) {
+        return this.matchConstantPool(targets, this.getBuffer()) != null;
+    }
+
+    /**
+     * Find the instructions referencing one of the targets. Only the instructions
+     * referencing the constant pool (<tt>invoke*</tt>, <tt>get/put*</tt>,
+     * <tt>ldc</tt> and <tt>new</tt>) are decoded, the others are just skipped.
+     * Method references and lambdas are found too: an <tt>invokedynamic</tt>
+     * whose bootstrap method or arguments reference a target, and an <tt>ldc</tt>
+     * of a method handle of a target, are reported with the referenced member.
+     * If the constant pool does not reference any target, the code is not read at all.
+     *
+     * @param targets the classes, fields and methods searched.
+     * @param visitor the visitor of the call sites found.
+     * @return the number of call sites found.
+     */
+    public int findCallSites(final CallSiteTargets targets, final CallSiteVisitor visitor) {
+        final char[] buf = this.getBuffer();
+        final boolean[] matches = this.matchConstantPool(targets, buf);
+        if (matches == null) {
+            return 0;
+        }
+        final int bootstrap = this.getBootstrapMethods(buf);
+        int found = 0;
+        int v = this.getMethods();
+        for (int i = ReaderUtil.readUnsignedShort(v, this.src); i > 0; --i) {
+            final int method = v + 2;
+            int attr = method + 8;
+            for (int j = ReaderUtil.readUnsignedShort(method + 6, this.src); j > 0; --j) {
+                if ("Code".equals(this.readUTF8(attr, buf))) {
+                    found += this.readCallSites(method, attr + 14, ReaderUtil.readInt(attr + 10, this.src),
+                            matches, bootstrap, buf, visitor);
+                }
+                attr += 6 + ReaderUtil.readInt(attr + 2, this.src);
+            }
+            v = attr - 2;
+        }
+        return found;
+    }
+
+    /**
+     * Marks the constant pool items referencing one of the targets.
+     *
+     * @param targets the classes, fields and methods searched.
+     * @param buf buf buffer to be used to call {@link #readUTF8 readUTF8}.
+     * @return the matching items indexed like {@link #items items}, or <tt>null</tt>
+     *         if no item matches.
+     */
+    private boolean[] matchConstantPool(final CallSiteTargets targets, final char[] buf) {
+        boolean[] matches = null;
+        boolean handles = false;
+        boolean indys = false;
+        for (int i = 1; i < this.items.length; ++i) {
+            final int index = this.items[i];
+            if (index == 0) {
+                continue; // the second slot of a CONSTANT_Long or CONSTANT_Double
+            }
+            final boolean match;
+            switch (this.src[index - 1]) {
+                case ConstantPoolTag.CLASS:
+                    match = targets.matchesClass(this.readUTF8(index, buf));
+                    break;
+                case ConstantPoolTag.FIELD:
+                case ConstantPoolTag.METH:
+                case ConstantPoolTag.IMETH:
+                    final int nameType = this.items[ReaderUtil.readUnsignedShort(index + 2, this.src)];
+                    match = targets.matchesMember(this.readClass(index, buf),
+                            this.readUTF8(nameType, buf), this.readUTF8(nameType + 2, buf));
+                    break;
+                case ConstantPoolTag.HANDLE:
+                    handles = true;
+                    match = false;
+                    break;
+                case ConstantPoolTag.INDY:
+                    indys = true;
+                    match = false;
+                    break;
+                default:
+                    match = false;
+                    break;
+            }
+            if (match) {
+                if (matches == null) {
+                    matches = new boolean[this.items.length];
+                }
+                matches[i] = true;
+            }
+        }
+        if (matches == null) {
+            // the method handles and the call sites only reference the items above
+            return null;
+        }
+        if (handles) {
+            for (int i = 1; i < this.items.length; ++i) {
+                final int index = this.items[i];
+                if (index != 0 && this.src[index - 1] == ConstantPoolTag.HANDLE
+                        && matches[ReaderUtil.readUnsignedShort(index + 1, this.src)]) {
+                    matches[i] = true;
+                }
+            }
+        }
+        final int bootstrap = indys ? this.getBootstrapMethods(buf) : 0;
+        if (bootstrap != 0) {
+            for (int i = 1; i < this.items.length; ++i) {
+                final int index = this.items[i];
+                if (index != 0 && this.src[index - 1] == ConstantPoolTag.INDY
+                        && this.findBootstrapMatch(bootstrap, ReaderUtil.readUnsignedShort(index, this.src), matches) != 0) {
+                    matches[i] = true;
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Returns the start index of the BootstrapMethods attribute content of this class.
+     *
+     * @param buf buf buffer to be used to call {@link #readUTF8 readUTF8}.
+     * @return the start index of the bootstrap methods count, or <tt>0</tt> if
+     *         the class has no BootstrapMethods attribute.
+     */
+    private int getBootstrapMethods(final char[] buf) {
+        int idx = this.getAttributes();
+        for (int i = ReaderUtil.readUnsignedShort(idx, this.src); i > 0 ; i--) {
+            if ("BootstrapMethods".equals(this.readUTF8(idx + 2, buf))) {
+                return idx + 8;
+            }
+            idx += 6 + ReaderUtil.readInt(idx + 4, this.src);
+        }
+        return 0;
+    }
+
+    /**
+     * Find the first matching item among the bootstrap method and the bootstrap
+     * arguments of a bootstrap_methods entry.
+     *
+     * @param bootstrap the start index of the bootstrap methods count.
+     * @param n the index of the entry in the bootstrap_methods table.
+     * @param matches the matching constant pool items.
+     * @return the matching constant pool item, or <tt>0</tt> if none matches.
+     */
+    private int findBootstrapMatch(final int bootstrap, final int n, final boolean[] matches) {
+        int v = bootstrap + 2;
+        for (int i = 0; i < n; ++i) {
+            v += 4 + 2 * ReaderUtil.readUnsignedShort(v + 2, this.src);
+        }
+        final int method = ReaderUtil.readUnsignedShort(v, this.src);
+        if (matches[method]) {
+            return method;
+        }
+        for (int i = ReaderUtil.readUnsignedShort(v + 2, this.src), a = v + 4; i > 0; --i, a += 2) {
+            final int arg = ReaderUtil.readUnsignedShort(a, this.src);
+            if (matches[arg]) {
+                return arg;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Walks the code of a method and reports the instructions referencing a
+     * matching constant pool item.
+     *
+     * @param method the start offset of the method_info structure.
+     * @param code the start offset of the code.
+     * @param length the length of the code.
+     * @param matches the matching constant pool items.
+     * @param bootstrap the start index of the bootstrap methods count, or <tt>0</tt>.
+     * @param buf buf buffer to be used to call {@link #readUTF8 readUTF8}.
+     * @param visitor the visitor of the call sites found.
+     * @return the number of call sites found.
+     */
+    private int readCallSites(final int method, final int code, final int length, final boolean[] matches,
+                              final int bootstrap, final char[] buf, final CallSiteVisitor visitor) {
+        int found = 0;
+        final int end = code + length;
+        int u = code;
+        while (u < end) {
+            final int start = u;
+            final int opcode = this.src[u] & 0xFF;
+            final int item;
+            switch (opcode) {
+                case Opcodes.LDC:
+                    item = this.src[u + 1] & 0xFF;
+                    u += 2;
+                    break;
+                case Opcodes.LDC_W:
+                case Opcodes.GETSTATIC:
+                case Opcodes.PUTSTATIC:
+                case Opcodes.GETFIELD:
+                case Opcodes.PUTFIELD:
+                case Opcodes.INVOKEVIRTUAL:
+                case Opcodes.INVOKESPECIAL:
+                case Opcodes.INVOKESTATIC:
+                case Opcodes.NEW:
+                    item = ReaderUtil.readUnsignedShort(u + 1, this.src);
+                    u += 3;
+                    break;
+                case Opcodes.INVOKEINTERFACE:
+                case Opcodes.INVOKEDYNAMIC:
+                    item = ReaderUtil.readUnsignedShort(u + 1, this.src);
+                    u += 5;
+                    break;
+                case Opcodes.TABLESWITCH:
+                    // skips 0 to 3 padding bytes, the default and the bounds
+                    u = u + 4 - ((u - code) & 3);
+                    u += 12 + 4 * (ReaderUtil.readInt(u + 8, this.src) - ReaderUtil.readInt(u + 4, this.src) + 1);
+                    continue;
+                case Opcodes.LOOKUPSWITCH:
+                    // skips 0 to 3 padding bytes, the default and the pairs count
+                    u = u + 4 - ((u - code) & 3);
+                    u += 8 + 8 * ReaderUtil.readInt(u + 4, this.src);
+                    continue;
+                case Opcodes.WIDE:
+                    u += (this.src[u + 1] & 0xFF) == Opcodes.IINC ? 6 : 4;
+                    continue;
+                default:
+                    final int size = Opcodes.length(opcode);
+                    if (size == 0) {
+                        throw new IllegalArgumentException("Unknown opcode " + opcode + " at offset " + (u - code));
+                    }
+                    u += size;
+                    continue;
+            }
+            if (matches[item]) {
+                final int index = this.items[this.resolveCallSite(item, bootstrap, matches)];
+                if (this.src[index - 1] == ConstantPoolTag.CLASS) {
+                    visitor.visitCallSite(this.readUTF8(method + 2, buf), this.readUTF8(method + 4, buf), start - code, opcode,
+                            this.readUTF8(index, buf), null, null);
+                }
+                else {
+                    final int nameType = this.items[ReaderUtil.readUnsignedShort(index + 2, this.src)];
+                    visitor.visitCallSite(this.readUTF8(method + 2, buf), this.readUTF8(method + 4, buf), start - code, opcode,
+                            this.readClass(index, buf), this.readUTF8(nameType, buf), this.readUTF8(nameType + 2, buf));
+                }
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the class or member referenced by a matching call site.
+     *
+     * @param item the matching constant pool item of the instruction.
+     * @param bootstrap the start index of the bootstrap methods count.
+     * @param matches the matching constant pool items.
+     * @return the CONSTANT_Class, CONSTANT_Fieldref, CONSTANT_Methodref or
+     *         CONSTANT_InterfaceMethodref item to be reported.
+     */
+    private int resolveCallSite(int item, final int bootstrap, final boolean[] matches) {
+        if (this.src[this.items[item] - 1] == ConstantPoolTag.INDY) {
+            item = this.findBootstrapMatch(bootstrap, ReaderUtil.readUnsignedShort(this.items[item], this.src), matches);
+        }
+        if (this.src[this.items[item] - 1] == ConstantPoolTag.HANDLE) {
+            item = ReaderUtil.readUnsignedShort(this.items[item] + 1, this.src);
+        }
+        return item;
+    }
+
+    /**
+     * Reads a CONSTANT_Class constant pool item in {@link #src src}.
+     *
+     * @param index the start index of an unsigned short value in {@link #src src},
+     *        whose value is the index of a class constant pool item.
+     * @param buf buffer to be used to read the item.
+     * @return the internal name of the class.
+     */
+    private String readClass(final int index, final char[] buf) {
+        return this.readUTF8(this.items[ReaderUtil.readUnsignedShort(index, this.src)], buf);
+    }
+
     /**
      * Iterater the annotation and find the target annotation in the class.
      *
@@ -267,27 +697,13 @@ public class ClassReader {
                 idx += 4;
                 break;
             case '@': // annotation_value
-                skipElement(idx + 2, buf);
+                idx = this.skipElement(idx + 2, buf);
                 break;
             case '[': // array_value
                 final int size = ReaderUtil.readUnsignedShort(idx, this.src);
                 idx += 2;
-                if (0 == size) {
-                    return this.skipElement(idx - 2, buf);
-                }
-                switch (this.src[idx++] & 0xFF) {
-                    case 'B':
-                    case 'Z':
-                    case 'S':
-                    case 'C':
-                    case 'I':
-                    case 'J':
-                    case 'F':
-                    case 'D':
-                        idx += 3*size -1;
-                        break;
-                    default:
-                        idx = this.skipElement(idx - 3, buf);
+                for (int i = 0; i < size; i++) {
+                    idx = this.skipAnnotationValue(idx, buf);
                 }
                 break;
             default:
@@ -297,21 +713,31 @@ public class ClassReader {
     }
 
     /**
-     * Returns the start index of the attribute_info structure of this class.
+     * Returns the start index of the methods count of this class.
      *
-     * @return the start index of the attribute_info structure of this class.
+     * @return the start index of the methods count of this class.
      */
-    private int getAttributes() {
+    private int getMethods() {
         // skips the header
         int idx = this.header + 8 + ReaderUtil.readUnsignedShort(this.header + 6, this.src) * 2;
-        // skips fields and methods
+        // skips fields
         for (int i = ReaderUtil.readUnsignedShort(idx, this.src); i > 0; --i) {
             for (int j = ReaderUtil.readUnsignedShort(idx + 8, this.src); j > 0; --j) {
                 idx += 6 + ReaderUtil.readInt(idx + 12, this.src);
             }
             idx += 8;
         }
-        idx += 2;
+        return idx + 2;
+    }
+
+    /**
+     * Returns the start index of the attribute_info structure of this class.
+     *
+     * @return the start index of the attribute_info structure of this class.
+     */
+    private int getAttributes() {
+        // skips methods
+        int idx = this.getMethods();
         for (int i = ReaderUtil.readUnsignedShort(idx, this.src); i > 0; --i) {
             for (int j = ReaderUtil.readUnsignedShort(idx + 8, this.src); j > 0; --j) {
                 idx += 6 + ReaderUtil.readInt(idx + 12, this.src);
@@ -322,6 +748,33 @@ public class ClassReader {
         return idx + 2;
     }
 
+    /**
+     * Returns the buffer of the current thread, large enough to read any string
+     * of this class.
+     *
+     * @return the buffer to be used to call {@link #readUTF8 readUTF8}.
+     */
+    private char[] getBuffer() {
+        char[] buf = BUFFER.get();
+        if (buf == null || buf.length < this.maxStringLength) {
+            buf = new char[Math.max(this.maxStringLength, 256)];
+            BUFFER.set(buf);
+        }
+        return buf;
+    }
+
+    /**
+     * Reads an UTF8 string constant pool item in {@link #src src} with the
+     * buffer of the current thread.
+     *
+     * @param index the start index of an unsigned short value in {@link #src src},
+     *        whose value is the index of an UTF8 constant pool item.
+     * @return the String corresponding to the specified UTF8 item.
+     */
+    public String readUTF8(final int index) {
+        return this.readUTF8(index, this.getBuffer());
+    }
+
     /**
      * Reads an UTF8 string constant pool item in {@link #src src}. <i>This method
      * is intended for Attribute sub classes, and is normally not needed
@@ -338,11 +791,13 @@ public class ClassReader {
         if (index == 0 || item == 0) {
             return null;
         }
-        final String s = this.strings[item];
+        String s = this.strings.get(item);
         if (s != null) {
             return s;
         }
         index = this.items[item];
-        return this.strings[item] = ReaderUtil.readUTF(index + 2, ReaderUtil.readUnsignedShort(index, this.src), buf, this.src);
+        s = ReaderUtil.readUTF(index + 2, ReaderUtil.readUnsignedShort(index, this.src), buf, this.src);
+        this.strings.set(item, s);
+        return s;
     }
 }
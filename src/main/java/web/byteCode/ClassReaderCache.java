@@ -0,0 +1,138 @@
+package web.byteCode;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A bounded cache of parsed classes, so that the repeated questions about a class
+ * (annotations, hierarchy, values) neither re-open the resource nor re-walk the
+ * constant pool. The entries are keyed by class name or by resource URL, and
+ * the least recently used ones are evicted once their estimated size exceeds
+ * the budget.
+ *
+ * This class is thread safe.
+ */
+public class ClassReaderCache {
+
+    /**
+     * The class loader used to find the classes by name.
+     */
+    private final ClassLoader classLoader;
+
+    /**
+     * <tt>false</tt> to keep only the compact index of the classes.
+     */
+    private final boolean keepBytes;
+
+    private final Cache<String, CachedClass> cache;
+
+    /**
+     * Constructs a new {@link ClassReaderCache} object.
+     *
+     * @param classLoader the class loader used to find the classes by name.
+     * @param maxBytes the budget of the cache, in estimated bytes.
+     * @param keepBytes <tt>true</tt> to keep the class bytes and the {@link ClassReader},
+     *        <tt>false</tt> to keep only the compact index of the classes.
+     */
+    public ClassReaderCache(final ClassLoader classLoader, final long maxBytes, final boolean keepBytes) {
+        this.classLoader = classLoader;
+        this.keepBytes = keepBytes;
+        this.cache = CacheBuilder.newBuilder()
+                // a single segment, otherwise the budget is split among the segments
+                .concurrencyLevel(1)
+                .maximumWeight(maxBytes)
+                .weigher(new Weigher<String, CachedClass>() {
+                    @Override
+                    public int weigh(final String key, final CachedClass value) {
+                        return value.getWeight();
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the class of the given name, reading it on a miss.
+     *
+     * @param className the class full name, such as <tt>web.controller.indexController</tt>.
+     * @return the parsed class.
+     * @throws java.io.IOException if the class is not found or can not be read.
+     */
+    public CachedClass get(final String className) throws IOException {
+        return this.get(className, new Callable<InputStream>() {
+            @Override
+            public InputStream call() {
+                return ClassReaderCache.this.classLoader.getResourceAsStream(className.replace('.', '/') + ".class");
+            }
+        });
+    }
+
+    /**
+     * Returns the class of the given resource, reading it on a miss.
+     *
+     * @param resource the URL of the class file.
+     * @return the parsed class.
+     * @throws java.io.IOException if the class can not be read.
+     */
+    public CachedClass get(final URL resource) throws IOException {
+        return this.get(resource.toExternalForm(), new Callable<InputStream>() {
+            @Override
+            public InputStream call() throws IOException {
+                return resource.openStream();
+            }
+        });
+    }
+
+    /**
+     * Returns the hit, miss, load and eviction statistics.
+     *
+     * @return a snapshot of the statistics.
+     */
+    public CacheStats stats() {
+        return this.cache.stats();
+    }
+
+    /**
+     * Returns the number of cached classes.
+     *
+     * @return the number of cached classes.
+     */
+    public long size() {
+        return this.cache.size();
+    }
+
+    /**
+     * Drops all the cached classes.
+     */
+    public void clear() {
+        this.cache.invalidateAll();
+    }
+
+    private CachedClass get(final String key, final Callable<InputStream> open) throws IOException {
+        try {
+            return this.cache.get(key, new Callable<CachedClass>() {
+                @Override
+                public CachedClass call() throws Exception {
+                    final ClassReader reader = new ClassReader(ReaderUtil.readClass(open.call(), true));
+                    return new CachedClass(reader, ClassReaderCache.this.keepBytes);
+                }
+            });
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (UncheckedExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+}
@@ -54,6 +54,23 @@ public class ReaderUtil {
         }
     }
 
+    /**
+     * Convent an internal name or a type descriptor to the class full name.
+     *
+     * @param name the internal name (<tt>web/annotation/Controller</tt>) or the
+     *        descriptor (<tt>Lweb/annotation/Controller;</tt>).
+     * @return the class full name, such as <tt>web.annotation.Controller</tt>.
+     */
+    public static String toClassName(final String name) {
+        int begin = 0;
+        int end = name.length();
+        if (end > 1 && name.charAt(0) == 'L' && name.charAt(end - 1) == ';') {
+            begin = 1;
+            end--;
+        }
+        return name.substring(begin, end).replace('/', '.');
+    }
+
     /**
      * Reads an unsigned short value in src. <i>This method is intended
      * for Attribute sub classes, and is normally not needed by class
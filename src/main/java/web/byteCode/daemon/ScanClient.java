@@ -0,0 +1,97 @@
+package web.byteCode.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A thin client of {@link ScanDaemon}. One client holds one connection, which
+ * is reused by all the queries. This class is not thread safe.
+ */
+public class ScanClient implements Closeable {
+
+    private final Socket socket;
+
+    private final DataInputStream in;
+
+    private final DataOutputStream out;
+
+    /**
+     * Connects to the daemon on the loopback address.
+     *
+     * @param port the port the daemon listens on.
+     * @throws java.io.IOException if the daemon can not be reached.
+     */
+    public ScanClient(final int port) throws IOException {
+        this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        this.socket.setTcpNoDelay(true);
+        this.in = new DataInputStream(new BufferedInputStream(this.socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(this.socket.getOutputStream()));
+    }
+
+    /**
+     * Find the classes annotated with the given annotation.
+     *
+     * @param annotationClass the annotation.
+     * @return the sorted class full names.
+     * @throws java.io.IOException if the daemon fails to answer.
+     */
+    public List<String> findClasses(final Class<?> annotationClass) throws IOException {
+        return this.query(ScanProtocol.OP_CLASSES, annotationClass.getName());
+    }
+
+    /**
+     * Find the fields and methods annotated with the given annotation.
+     *
+     * @param annotationClass the annotation.
+     * @return the sorted member names, such as <tt>web.controller.indexController#index()V</tt>.
+     * @throws java.io.IOException if the daemon fails to answer.
+     */
+    public List<String> findMembers(final Class<?> annotationClass) throws IOException {
+        return this.query(ScanProtocol.OP_MEMBERS, annotationClass.getName());
+    }
+
+    /**
+     * Asks the daemon to refresh its index now.
+     *
+     * @return the number of sources added, changed or removed.
+     * @throws java.io.IOException if the daemon fails to refresh.
+     */
+    public int refresh() throws IOException {
+        this.out.writeByte(ScanProtocol.OP_REFRESH);
+        this.out.flush();
+        this.readStatus();
+        return this.in.readInt();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.socket.close();
+    }
+
+    private List<String> query(final int op, final String annotation) throws IOException {
+        this.out.writeByte(op);
+        this.out.writeUTF(annotation);
+        this.out.flush();
+        this.readStatus();
+        final int n = this.in.readInt();
+        final List<String> names = new ArrayList<String>(n);
+        for (int i = 0; i < n; i++) {
+            names.add(this.in.readUTF());
+        }
+        return names;
+    }
+
+    private void readStatus() throws IOException {
+        if (this.in.readUnsignedByte() != ScanProtocol.STATUS_OK) {
+            throw new IOException(this.in.readUTF());
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package web.byteCode.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A long-running daemon which keeps a warm {@link ScanIndex} and answers the
+ * queries of {@link ScanClient} with the {@link ScanProtocol}. The daemon only
+ * listens on the loopback address, and drops a connection idle for longer than
+ * {@link #IDLE_TIMEOUT_MILLIS}.
+ *
+ * Usage: <tt>java web.byteCode.daemon.ScanDaemon &lt;port&gt; &lt;root&gt;...</tt>
+ */
+public class ScanDaemon implements Closeable {
+
+    /**
+     * How long a connection may wait for its next request before it is closed.
+     */
+    public static final int IDLE_TIMEOUT_MILLIS = 5 * 60 * 1000;
+
+    /**
+     * The index to be queried.
+     */
+    private final ScanIndex index;
+
+    /**
+     * The socket the daemon listens on.
+     */
+    private final ServerSocket server;
+
+    /**
+     * The accepted connections, closed by {@link #close()}.
+     */
+    private final Set<Socket> connections = Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+
+    /**
+     * Set by {@link #close()}.
+     */
+    private volatile boolean closed;
+
+    /**
+     * The threads serving the connections.
+     */
+    private final ExecutorService workers = Executors.newCachedThreadPool(new DaemonThreadFactory());
+
+    /**
+     * The thread refreshing the index.
+     */
+    private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory());
+
+    /**
+     * Constructs a new {@link ScanDaemon} object and binds it to the loopback address.
+     *
+     * @param index the index to be queried.
+     * @param port the port to listen on, <tt>0</tt> for any free port.
+     * @throws java.io.IOException if the port can not be bound.
+     */
+    public ScanDaemon(final ScanIndex index, final int port) throws IOException {
+        this.index = index;
+        this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * Returns the port the daemon listens on.
+     *
+     * @return the local port.
+     */
+    public int getPort() {
+        return this.server.getLocalPort();
+    }
+
+    /**
+     * Starts to accept the connections.
+     *
+     * @param refreshMillis the interval between two refreshes of the index, or
+     *        <tt>0</tt> to refresh only on {@link ScanProtocol#OP_REFRESH} requests.
+     */
+    public void start(final long refreshMillis) {
+        if (refreshMillis > 0) {
+            this.refresher.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        ScanDaemon.this.index.refresh();
+                    } catch (RuntimeException e) {
+                        // keeps the last index, an exception escaping here would cancel the next refreshes
+                    }
+                }
+            }, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+        }
+        this.workers.execute(new Runnable() {
+            @Override
+            public void run() {
+                ScanDaemon.this.accept();
+            }
+        });
+    }
+
+    /**
+     * Stops the daemon, closes the listening socket and disconnects the clients.
+     *
+     * @throws java.io.IOException if a problem occurs during closing.
+     */
+    @Override
+    public void close() throws IOException {
+        this.closed = true;
+        this.refresher.shutdownNow();
+        this.server.close();
+        // the workers blocked in a read only return once their socket is closed
+        for (Socket socket : this.connections) {
+            closeQuietly(socket);
+        }
+        this.workers.shutdownNow();
+    }
+
+    /**
+     * Accepts the connections until the daemon is closed.
+     */
+    private void accept() {
+        while (!this.server.isClosed()) {
+            final Socket socket;
+            try {
+                socket = this.server.accept();
+            } catch (IOException e) {
+                return;
+            }
+            this.connections.add(socket);
+            if (this.closed) {
+                // close() may have missed this socket
+                this.connections.remove(socket);
+                closeQuietly(socket);
+                return;
+            }
+            this.workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    ScanDaemon.this.serve(socket);
+                }
+            });
+        }
+    }
+
+    /**
+     * Serves the requests of one connection until the client closes it, the
+     * connection stays idle for too long or the daemon is closed.
+     *
+     * @param socket the client connection.
+     */
+    private void serve(final Socket socket) {
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(IDLE_TIMEOUT_MILLIS);
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            while (!this.closed) {
+                final int op;
+                try {
+                    op = in.readUnsignedByte();
+                } catch (EOFException e) {
+                    return;
+                }
+                switch (op) {
+                    case ScanProtocol.OP_CLASSES:
+                        writeNames(out, this.index.findClasses(in.readUTF()));
+                        break;
+                    case ScanProtocol.OP_MEMBERS:
+                        writeNames(out, this.index.findMembers(in.readUTF()));
+                        break;
+                    case ScanProtocol.OP_REFRESH:
+                        try {
+                            final int changed = this.index.refresh();
+                            out.writeByte(ScanProtocol.STATUS_OK);
+                            out.writeInt(changed);
+                        } catch (RuntimeException e) {
+                            writeError(out, String.valueOf(e));
+                        }
+                        break;
+                    default:
+                        // the rest of the stream can not be parsed any more
+                        writeError(out, "Unknown opcode " + op);
+                        out.flush();
+                        return;
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            // the client has gone away, has been idle for too long or the daemon is closed
+        } finally {
+            this.connections.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    private static void closeQuietly(final Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    private static void writeNames(final DataOutputStream out, final Collection<String> names) throws IOException {
+        out.writeByte(ScanProtocol.STATUS_OK);
+        out.writeInt(names.size());
+        for (String name : names) {
+            out.writeUTF(name);
+        }
+    }
+
+    private static void writeError(final DataOutputStream out, final String message) throws IOException {
+        out.writeByte(ScanProtocol.STATUS_ERROR);
+        out.writeUTF(message);
+    }
+
+    /**
+     * Creates daemon threads so that the daemon never keeps the JVM alive by itself.
+     */
+    private static class DaemonThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, "scan-daemon");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * Starts a daemon from the command line.
+     *
+     * @param args the port followed by the classpath roots.
+     * @throws Exception if the daemon can not be started.
+     */
+    public static void main(final String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: ScanDaemon <port> <root>...");
+            System.exit(1);
+        }
+        final List<File> roots = new ArrayList<File>();
+        for (int i = 1; i < args.length; i++) {
+            roots.add(new File(args[i]));
+        }
+        final ScanIndex index = new ScanIndex(roots);
+        index.refresh();
+        final ScanDaemon daemon = new ScanDaemon(index, Integer.parseInt(args[0]));
+        daemon.start(2000L);
+        // the worker threads are daemon threads, so keep the main thread alive
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,351 @@
+package web.byteCode.daemon;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.SetMultimap;
+import web.byteCode.ClassReader;
+import web.byteCode.ReaderUtil;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * An in-memory annotation index over a set of classpath roots. A root is either a
+ * directory of class files or a jar file. {@link #refresh()} only parses the sources
+ * (class files and jars) whose last modified time has changed since the last refresh.
+ *
+ * The roots are scanned and the sources parsed without blocking the queries; the
+ * queries only wait while the changed sources are swapped in. A class which can not
+ * be read is skipped and reported by {@link #getFailures()}.
+ *
+ * This class is thread safe.
+ */
+public class ScanIndex {
+
+    /**
+     * The classpath roots.
+     */
+    private final List<File> roots;
+
+    /**
+     * Serializes the refreshes. The queries lock the index itself.
+     */
+    private final Object refreshLock = new Object();
+
+    /**
+     * The last modified time of each indexed source, guarded by {@link #refreshLock}.
+     */
+    private final Map<String, Long> stamps = new HashMap<String, Long>();
+
+    /**
+     * The classes read from each indexed source, guarded by the index.
+     */
+    private final Map<String, Source> sources = new HashMap<String, Source>();
+
+    /**
+     * The class full names keyed by annotation full name. A class counts once
+     * per source providing it, so that the same class in two roots stays indexed
+     * until both are gone.
+     */
+    private final Map<String, Multiset<String>> classes = new HashMap<String, Multiset<String>>();
+
+    /**
+     * The member names (<tt>class#nameDescriptor</tt>) keyed by annotation full name,
+     * counted like {@link #classes}.
+     */
+    private final Map<String, Multiset<String>> members = new HashMap<String, Multiset<String>>();
+
+    /**
+     * Constructs a new {@link ScanIndex} object. The index is empty until the
+     * first {@link #refresh()}.
+     *
+     * @param roots the directories and jar files to be indexed.
+     */
+    public ScanIndex(final List<File> roots) {
+        this.roots = new ArrayList<File>(roots);
+    }
+
+    /**
+     * Rescans the roots and re-index the changed sources.
+     *
+     * @return the number of sources added, changed or removed.
+     */
+    public int refresh() {
+        synchronized (this.refreshLock) {
+            final Map<String, File> current = new HashMap<String, File>();
+            for (File root : this.roots) {
+                if (root.isDirectory()) {
+                    this.listClassFiles(root, current);
+                }
+                else if (root.isFile()) {
+                    current.put(root.getPath(), root);
+                }
+            }
+
+            final List<String> removed = new ArrayList<String>();
+            for (String source : this.stamps.keySet()) {
+                if (!current.containsKey(source)) {
+                    removed.add(source);
+                }
+            }
+            final Map<String, Source> read = new HashMap<String, Source>();
+            final Map<String, Long> modified = new HashMap<String, Long>();
+            for (Map.Entry<String, File> e : current.entrySet()) {
+                final Long stamp = this.stamps.get(e.getKey());
+                final long lastModified = e.getValue().lastModified();
+                if (stamp == null || stamp != lastModified) {
+                    read.put(e.getKey(), this.read(e.getKey(), e.getValue()));
+                    modified.put(e.getKey(), lastModified);
+                }
+            }
+            if (removed.isEmpty() && read.isEmpty()) {
+                return 0;
+            }
+
+            synchronized (this) {
+                for (String source : removed) {
+                    this.remove(source);
+                }
+                for (Map.Entry<String, Source> e : read.entrySet()) {
+                    this.remove(e.getKey());
+                    this.add(e.getKey(), e.getValue());
+                }
+            }
+            for (String source : removed) {
+                this.stamps.remove(source);
+            }
+            this.stamps.putAll(modified);
+            return removed.size() + read.size();
+        }
+    }
+
+    /**
+     * Find the classes annotated with the given annotation.
+     *
+     * @param annotation the annotation full name.
+     * @return the sorted class full names.
+     */
+    public synchronized Set<String> findClasses(final String annotation) {
+        return copyOf(this.classes.get(annotation));
+    }
+
+    /**
+     * Find the fields and methods annotated with the given annotation.
+     *
+     * @param annotation the annotation full name.
+     * @return the sorted member names, such as <tt>web.controller.indexController#index()V</tt>.
+     */
+    public synchronized Set<String> findMembers(final String annotation) {
+        return copyOf(this.members.get(annotation));
+    }
+
+    /**
+     * Returns the classes skipped because they could not be read.
+     *
+     * @return the error messages keyed by class file path, or by <tt>jar!entry</tt>
+     *         for the classes of a jar.
+     */
+    public synchronized Map<String, String> getFailures() {
+        final Map<String, String> failures = new TreeMap<String, String>();
+        for (Source source : this.sources.values()) {
+            failures.putAll(source.failures);
+        }
+        return failures;
+    }
+
+    /**
+     * Collect the class files under the directory.
+     *
+     * @param dir the directory.
+     * @param files the map the class files are added to, keyed by path.
+     */
+    private void listClassFiles(final File dir, final Map<String, File> files) {
+        final File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                this.listClassFiles(child, files);
+            }
+            else if (child.getName().endsWith(".class")) {
+                files.put(child.getPath(), child);
+            }
+        }
+    }
+
+    /**
+     * Parse a class file or a jar file. A class which can not be read is
+     * recorded as a failure and the others are still read.
+     *
+     * @param source the source key.
+     * @param file the class file or the jar file.
+     * @return the classes read.
+     */
+    private Source read(final String source, final File file) {
+        final Source read = new Source();
+        if (file.getName().endsWith(".class")) {
+            try {
+                read.entries.add(new Entry(ReaderUtil.readClass(new FileInputStream(file), true)));
+            } catch (IOException e) {
+                read.failures.put(source, String.valueOf(e));
+            } catch (RuntimeException e) {
+                read.failures.put(source, String.valueOf(e));
+            }
+            return read;
+        }
+
+        final JarFile jar;
+        try {
+            jar = new JarFile(file);
+        } catch (IOException e) {
+            read.failures.put(source, String.valueOf(e));
+            return read;
+        }
+        try {
+            for (Enumeration<JarEntry> e = jar.entries(); e.hasMoreElements(); ) {
+                final JarEntry entry = e.nextElement();
+                if (entry.getName().endsWith(".class")) {
+                    try {
+                        final InputStream is = jar.getInputStream(entry);
+                        read.entries.add(new Entry(ReaderUtil.readClass(is, true)));
+                    } catch (IOException ex) {
+                        read.failures.put(source + '!' + entry.getName(), String.valueOf(ex));
+                    } catch (RuntimeException ex) {
+                        read.failures.put(source + '!' + entry.getName(), String.valueOf(ex));
+                    }
+                }
+            }
+        } finally {
+            try {
+                jar.close();
+            } catch (IOException e) {
+                // the classes have been read already
+            }
+        }
+        return read;
+    }
+
+    /**
+     * Index the classes of a source. The caller holds the index lock.
+     *
+     * @param source the source key.
+     * @param read the classes read from the source.
+     */
+    private void add(final String source, final Source read) {
+        for (Entry entry : read.entries) {
+            for (String annotation : entry.annotations) {
+                put(this.classes, annotation, entry.className);
+            }
+            for (Map.Entry<String, String> e : entry.members.entries()) {
+                put(this.members, e.getKey(), e.getValue());
+            }
+        }
+        this.sources.put(source, read);
+    }
+
+    /**
+     * Drop the classes of a source from the index. The caller holds the index lock.
+     *
+     * @param source the source key.
+     */
+    private void remove(final String source) {
+        final Source read = this.sources.remove(source);
+        if (read == null) {
+            return;
+        }
+        for (Entry entry : read.entries) {
+            for (String annotation : entry.annotations) {
+                remove(this.classes, annotation, entry.className);
+            }
+            for (Map.Entry<String, String> e : entry.members.entries()) {
+                remove(this.members, e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    private static void put(final Map<String, Multiset<String>> map, final String key, final String value) {
+        Multiset<String> values = map.get(key);
+        if (values == null) {
+            values = HashMultiset.create();
+            map.put(key, values);
+        }
+        values.add(value);
+    }
+
+    private static void remove(final Map<String, Multiset<String>> map, final String key, final String value) {
+        final Multiset<String> values = map.get(key);
+        if (values != null && values.remove(value) && values.isEmpty()) {
+            map.remove(key);
+        }
+    }
+
+    private static Set<String> copyOf(final Multiset<String> values) {
+        if (values == null) {
+            return Collections.emptySet();
+        }
+        return ImmutableSortedSet.copyOf(values.elementSet());
+    }
+
+    /**
+     * The classes read from one class file or jar file.
+     */
+    private static class Source {
+
+        final List<Entry> entries = new ArrayList<Entry>();
+
+        /**
+         * The error messages of the classes which could not be read.
+         */
+        final Map<String, String> failures = new HashMap<String, String>();
+    }
+
+    /**
+     * The annotations read from one class.
+     */
+    private static class Entry {
+
+        /**
+         * The class full name.
+         */
+        final String className;
+
+        /**
+         * The annotation full names of the class.
+         */
+        final Set<String> annotations = new HashSet<String>();
+
+        /**
+         * The member names keyed by annotation full name.
+         */
+        final SetMultimap<String, String> members = HashMultimap.create();
+
+        Entry(final byte[] src) {
+            final ClassReader reader = new ClassReader(src);
+            this.className = ReaderUtil.toClassName(reader.getClassName());
+            for (String type : reader.getAnnotationTypes()) {
+                this.annotations.add(ReaderUtil.toClassName(type));
+            }
+            for (Map.Entry<String, List<String>> e : reader.getMemberAnnotationTypes().entrySet()) {
+                for (String type : e.getValue()) {
+                    this.members.put(ReaderUtil.toClassName(type), this.className + '#' + e.getKey());
+                }
+            }
+        }
+    }
+}
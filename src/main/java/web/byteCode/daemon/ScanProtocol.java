@@ -0,0 +1,42 @@
+package web.byteCode.daemon;
+
+/**
+ * The binary protocol spoken between {@link ScanDaemon} and {@link ScanClient}.
+ *
+ * A request is one opcode byte, followed by the annotation class full name
+ * (written by {@link java.io.DataOutput#writeUTF writeUTF}) for the query opcodes.
+ * A response starts with one status byte. On {@link #STATUS_OK} it carries an
+ * u4 count, followed by that many names for the query opcodes; on
+ * {@link #STATUS_ERROR} it carries the error message. A connection may carry
+ * any number of requests.
+ */
+public final class ScanProtocol {
+
+    /**
+     * Queries the classes annotated with the given annotation.
+     */
+    public static final int OP_CLASSES = 1;
+
+    /**
+     * Queries the fields and methods annotated with the given annotation.
+     */
+    public static final int OP_MEMBERS = 2;
+
+    /**
+     * Refreshes the index, the count in the response is the number of changed sources.
+     */
+    public static final int OP_REFRESH = 3;
+
+    /**
+     * The request has been served.
+     */
+    public static final int STATUS_OK = 0;
+
+    /**
+     * The request has failed.
+     */
+    public static final int STATUS_ERROR = 1;
+
+    private ScanProtocol() {
+    }
+}
@@ -0,0 +1,120 @@
+package web.byteCode.meta;
+
+/**
+ * The JVM opcodes needed to walk a Code attribute.
+ */
+public class Opcodes {
+
+    /**
+     * The <tt>ldc</tt> instruction.
+     */
+    public static final int LDC = 18;
+
+    /**
+     * The <tt>ldc_w</tt> instruction.
+     */
+    public static final int LDC_W = 19;
+
+    /**
+     * The <tt>iinc</tt> instruction.
+     */
+    public static final int IINC = 132;
+
+    /**
+     * The <tt>tableswitch</tt> instruction.
+     */
+    public static final int TABLESWITCH = 170;
+
+    /**
+     * The <tt>lookupswitch</tt> instruction.
+     */
+    public static final int LOOKUPSWITCH = 171;
+
+    /**
+     * The <tt>getstatic</tt> instruction.
+     */
+    public static final int GETSTATIC = 178;
+
+    /**
+     * The <tt>putstatic</tt> instruction.
+     */
+    public static final int PUTSTATIC = 179;
+
+    /**
+     * The <tt>getfield</tt> instruction.
+     */
+    public static final int GETFIELD = 180;
+
+    /**
+     * The <tt>putfield</tt> instruction.
+     */
+    public static final int PUTFIELD = 181;
+
+    /**
+     * The <tt>invokevirtual</tt> instruction.
+     */
+    public static final int INVOKEVIRTUAL = 182;
+
+    /**
+     * The <tt>invokespecial</tt> instruction.
+     */
+    public static final int INVOKESPECIAL = 183;
+
+    /**
+     * The <tt>invokestatic</tt> instruction.
+     */
+    public static final int INVOKESTATIC = 184;
+
+    /**
+     * The <tt>invokeinterface</tt> instruction.
+     */
+    public static final int INVOKEINTERFACE = 185;
+
+    /**
+     * The <tt>invokedynamic</tt> instruction.
+     */
+    public static final int INVOKEDYNAMIC = 186;
+
+    /**
+     * The <tt>new</tt> instruction.
+     */
+    public static final int NEW = 187;
+
+    /**
+     * The <tt>wide</tt> instruction.
+     */
+    public static final int WIDE = 196;
+
+    /**
+     * The length in bytes of each instruction, including the opcode. The value is
+     * <tt>0</tt> for the variable length instructions ({@link #TABLESWITCH},
+     * {@link #LOOKUPSWITCH} and {@link #WIDE}) and for the unused opcodes.
+     */
+    private static final byte[] LENGTHS;
+
+    static {
+        final String s = "1111111111111111232332222211111111111111111111111111112222211111"
+                + "1111111111111111111111111111111111111111111111111111111111111111"
+                + "1111311111111111111111111333333333333333320011111133333335532311"
+                + "3311043355";
+        LENGTHS = new byte[256];
+        for (int i = 0; i < s.length(); ++i) {
+            LENGTHS[i] = (byte) (s.charAt(i) - '0');
+        }
+    }
+
+    private Opcodes() {
+    }
+
+    /**
+     * Returns the length in bytes of an instruction, including the opcode.
+     *
+     * @param opcode the opcode of the instruction, from <tt>0</tt> to <tt>255</tt>.
+     * @return the length of the instruction, or <tt>0</tt> for the variable length
+     *         instructions ({@link #TABLESWITCH}, {@link #LOOKUPSWITCH} and
+     *         {@link #WIDE}) and for the unused opcodes.
+     */
+    public static int length(final int opcode) {
+        return LENGTHS[opcode];
+    }
+}
@@ -0,0 +1,63 @@
+package web.byteCode;
+
+import org.junit.Assert;
+import org.junit.Test;
+import web.annotation.Controller;
+import web.annotation.Services;
+
+import java.io.IOException;
+import java.net.URL;
+
+public class cacheTest {
+
+    @Test
+    public void test() throws IOException {
+        ClassReaderCache cache = new ClassReaderCache(cacheTest.class.getClassLoader(), 1 << 20, true);
+        CachedClass cached = cache.get("web.controller.mixedController");
+        Assert.assertSame(cached, cache.get("web.controller.mixedController"));
+        Assert.assertTrue(cached.containsAnnotation(Controller.class));
+        Assert.assertTrue(cached.getReader().containsAnnotation(Services.class));
+        Assert.assertEquals("java/lang/Object", cached.getSuperName());
+        Assert.assertEquals(1, cache.stats().hitCount());
+        Assert.assertEquals(1, cache.stats().missCount());
+    }
+
+    @Test
+    public void testCompact() throws IOException {
+        ClassReaderCache cache = new ClassReaderCache(cacheTest.class.getClassLoader(), 1 << 20, false);
+        URL resource = cacheTest.class.getResource("/web/controller/otherController.class");
+        CachedClass cached = cache.get(resource);
+        Assert.assertNull(cached.getReader());
+        Assert.assertEquals("web/controller/otherController", cached.getClassName());
+        Assert.assertTrue(cached.containsAnnotation(Services.class));
+        Assert.assertFalse(cached.containsAnnotation(Controller.class));
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+        ClassReaderCache cache = new ClassReaderCache(cacheTest.class.getClassLoader(), 1, true);
+        cache.get("web.controller.indexController");
+        cache.get("web.controller.indexController");
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(2, cache.stats().missCount());
+        Assert.assertTrue(cache.stats().evictionCount() > 0);
+    }
+
+    @Test
+    public void testWholeBudget() throws IOException {
+        int weight = new ClassReaderCache(cacheTest.class.getClassLoader(), 1 << 20, true)
+                .get("web.controller.mixedController").getWeight();
+        // the class takes more than a quarter of the budget but fits in it
+        ClassReaderCache cache = new ClassReaderCache(cacheTest.class.getClassLoader(), weight * 2, true);
+        cache.get("web.controller.mixedController");
+        cache.get("web.controller.mixedController");
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(1, cache.stats().hitCount());
+        Assert.assertEquals(0, cache.stats().evictionCount());
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotFound() throws IOException {
+        new ClassReaderCache(cacheTest.class.getClassLoader(), 1 << 20, true).get("web.controller.missing");
+    }
+}
@@ -0,0 +1,119 @@
+package web.byteCode;
+
+import org.junit.Assert;
+import org.junit.Test;
+import web.byteCode.meta.Opcodes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+public class callSiteTest {
+
+    @Test
+    public void test() throws IOException {
+        InputStream is = callSiteTest.class.getResourceAsStream("/web/byteCode/indexTest.class");
+        ClassReader classReader = new ClassReader(is);
+        CallSiteTargets targets = new CallSiteTargets().addMember("web.byteCode.ClassReader", "containsAnnotation");
+        final List<String> sites = new ArrayList<String>();
+        int found = classReader.findCallSites(targets, new CallSiteVisitor() {
+            @Override
+            public void visitCallSite(String methodName, String methodDesc, int offset, int opcode,
+                                      String owner, String name, String desc) {
+                Assert.assertEquals(Opcodes.INVOKEVIRTUAL, opcode);
+                Assert.assertEquals("web/byteCode/ClassReader", owner);
+                Assert.assertEquals("(Ljava/lang/Class;)Z", desc);
+                sites.add(methodName + methodDesc);
+            }
+        });
+        Assert.assertEquals(2, found);
+        Assert.assertTrue(sites.contains("test()V"));
+        Assert.assertTrue(sites.contains("testa()V"));
+    }
+
+    @Test
+    public void testClass() throws IOException {
+        InputStream is = callSiteTest.class.getResourceAsStream("/web/byteCode/mixedTest.class");
+        ClassReader classReader = new ClassReader(is);
+        CallSiteTargets targets = new CallSiteTargets().addClass("web.byteCode.ClassReader");
+        final List<Integer> opcodes = new ArrayList<Integer>();
+        classReader.findCallSites(targets, new CallSiteVisitor() {
+            @Override
+            public void visitCallSite(String methodName, String methodDesc, int offset, int opcode,
+                                      String owner, String name, String desc) {
+                opcodes.add(opcode);
+            }
+        });
+        // new, <init> and containsAnnotation for both readers
+        Assert.assertEquals(6, opcodes.size());
+        Assert.assertTrue(opcodes.contains(Opcodes.NEW));
+        Assert.assertTrue(opcodes.contains(Opcodes.INVOKESPECIAL));
+    }
+
+    @Test
+    public void testNoReference() throws IOException {
+        InputStream is = callSiteTest.class.getResourceAsStream("/web/controller/indexController.class");
+        ClassReader classReader = new ClassReader(is);
+        CallSiteTargets targets = new CallSiteTargets().addMember("web.byteCode.ClassReader", "containsAnnotation");
+        Assert.assertFalse(classReader.referencesAny(targets));
+        Assert.assertEquals(0, classReader.findCallSites(targets, null));
+    }
+
+    @Test
+    public void testMethodReference() throws IOException {
+        InputStream is = callSiteTest.class.getResourceAsStream("/web/byteCode/callSiteTest$MethodReference.class");
+        ClassReader classReader = new ClassReader(is);
+        CallSiteTargets targets = new CallSiteTargets().addMember("web.byteCode.ClassReader", "getClassName");
+        final List<String> sites = new ArrayList<String>();
+        int found = classReader.findCallSites(targets, new CallSiteVisitor() {
+            @Override
+            public void visitCallSite(String methodName, String methodDesc, int offset, int opcode,
+                                      String owner, String name, String desc) {
+                Assert.assertEquals(Opcodes.INVOKEDYNAMIC, opcode);
+                sites.add(owner + '.' + name + desc);
+            }
+        });
+        Assert.assertTrue(classReader.referencesAny(targets));
+        Assert.assertEquals(1, found);
+        Assert.assertEquals("web/byteCode/ClassReader.getClassName()Ljava/lang/String;", sites.get(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownOpcode() throws IOException {
+        byte[] src = ReaderUtil.readClass(callSiteTest.class.getResourceAsStream("/web/controller/indexController.class"), true);
+        // the code of index() is a single return instruction
+        int i = indexOf(src, new byte[] {0, 0, 0, 1, (byte) 0xB1});
+        Assert.assertTrue(i > 0);
+        src[i + 4] = (byte) 0xFF;
+        new ClassReader(src).findCallSites(new CallSiteTargets().addClass("java.lang.Object"), new CallSiteVisitor() {
+            @Override
+            public void visitCallSite(String methodName, String methodDesc, int offset, int opcode,
+                                      String owner, String name, String desc) {
+            }
+        });
+    }
+
+    private static int indexOf(final byte[] src, final byte[] pattern) {
+        for (int i = 0; i + pattern.length <= src.length; i++) {
+            int j = 0;
+            while (j < pattern.length && src[i + j] == pattern[j]) {
+                j++;
+            }
+            if (j == pattern.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Only references {@link ClassReader#getClassName} through a method reference.
+     */
+    static class MethodReference {
+        Callable<String> className(final ClassReader reader) {
+            return reader::getClassName;
+        }
+    }
+}
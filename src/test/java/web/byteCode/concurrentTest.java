@@ -0,0 +1,49 @@
+package web.byteCode;
+
+import org.junit.Assert;
+import org.junit.Test;
+import web.annotation.Controller;
+import web.annotation.Services;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class concurrentTest {
+
+    @Test
+    public void test() throws Exception {
+        InputStream is = concurrentTest.class.getResourceAsStream("/web/controller/mixedController.class");
+        final ClassReader classReader = new ClassReader(is);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < 64; i++) {
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        boolean ok = true;
+                        for (int j = 0; j < 100; j++) {
+                            ok &= classReader.containsAnnotation(Controller.class);
+                            ok &= classReader.containsAnnotation(Services.class);
+                            ok &= "web/controller/mixedController".equals(classReader.getClassName());
+                            ok &= Arrays.asList("Lweb/annotation/Controller;", "Lweb/annotation/Services;")
+                                    .equals(classReader.getAnnotationTypes());
+                        }
+                        return ok;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                Assert.assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package web.byteCode.daemon;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import web.byteCode.ReaderUtil;
+import web.annotation.Controller;
+import web.annotation.Services;
+import web.controller.indexController;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class daemonTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void test() throws Exception {
+        File main = new File(indexController.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        File test = new File(daemonTest.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        ScanIndex index = new ScanIndex(Arrays.asList(main, test));
+        Assert.assertTrue(index.refresh() > 0);
+        Assert.assertEquals(0, index.refresh());
+
+        ScanDaemon daemon = new ScanDaemon(index, 0);
+        daemon.start(0);
+        ScanClient client = new ScanClient(daemon.getPort());
+        try {
+            List<String> controllers = client.findClasses(Controller.class);
+            Assert.assertEquals(Arrays.asList("web.controller.indexController", "web.controller.mixedController"), controllers);
+            List<String> services = client.findClasses(Services.class);
+            Assert.assertEquals(Arrays.asList("web.controller.mixedController", "web.controller.otherController"), services);
+            Assert.assertTrue(client.findMembers(Controller.class).isEmpty());
+            Assert.assertTrue(client.findMembers(Test.class).contains("web.byteCode.daemon.daemonTest#test()V"));
+            Assert.assertEquals(0, client.refresh());
+        } finally {
+            client.close();
+            daemon.close();
+        }
+    }
+
+    @Test
+    public void testCloseDisconnectsClients() throws Exception {
+        File main = new File(indexController.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        ScanIndex index = new ScanIndex(Collections.singletonList(main));
+        index.refresh();
+
+        ScanDaemon daemon = new ScanDaemon(index, 0);
+        daemon.start(0);
+        ScanClient client = new ScanClient(daemon.getPort());
+        try {
+            Assert.assertFalse(client.findClasses(Controller.class).isEmpty());
+            daemon.close();
+            try {
+                client.findClasses(Controller.class);
+                Assert.fail("the daemon still answers after close()");
+            } catch (IOException e) {
+                // expected
+            }
+        } finally {
+            client.close();
+            daemon.close();
+        }
+    }
+
+    @Test
+    public void testCorruptClass() throws IOException {
+        byte[] src = ReaderUtil.readClass(daemonTest.class.getResourceAsStream("/web/controller/indexController.class"), true);
+        File root = this.folder.getRoot();
+        write(new File(root, "indexController.class"), src, src.length);
+        write(new File(root, "Bad.class"), src, src.length / 2);
+        write(new File(root, "Empty.class"), src, 0);
+
+        ScanIndex index = new ScanIndex(Collections.singletonList(root));
+        Assert.assertEquals(3, index.refresh());
+        Assert.assertEquals(Collections.singleton("web.controller.indexController"), index.findClasses(Controller.class.getName()));
+        Assert.assertEquals(2, index.getFailures().size());
+        Assert.assertTrue(index.getFailures().containsKey(new File(root, "Bad.class").getPath()));
+        Assert.assertEquals(0, index.refresh());
+    }
+
+    @Test
+    public void testSameClassInTwoRoots() throws Exception {
+        File main = new File(indexController.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        byte[] src = ReaderUtil.readClass(daemonTest.class.getResourceAsStream("/web/controller/indexController.class"), true);
+        File copy = new File(this.folder.getRoot(), "indexController.class");
+        write(copy, src, src.length);
+
+        ScanIndex index = new ScanIndex(Arrays.asList(main, this.folder.getRoot()));
+        index.refresh();
+        Assert.assertTrue(copy.delete());
+        Assert.assertEquals(1, index.refresh());
+        Assert.assertTrue(index.findClasses(Controller.class.getName()).contains("web.controller.indexController"));
+    }
+
+    private static void write(final File file, final byte[] src, final int len) throws IOException {
+        FileOutputStream os = new FileOutputStream(file);
+        try {
+            os.write(src, 0, len);
+        } finally {
+            os.close();
+        }
+    }
+}